@@ -0,0 +1,259 @@
+package com.cameraswitcher.app;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bound service that lets another process drive camera switches.
+ *
+ * Clients bind with an explicit intent and talk through a {@link Messenger}.
+ * Every command carries a client sequence number in {@code arg1}, which is echoed
+ * in the reply. Commands are forwarded to the running {@link MainActivity} and go
+ * through the same switch path as the on-screen buttons.
+ *
+ * Commands: {@link #MSG_SWITCH_TO_ID} (data: {@link #KEY_CAMERA_ID}), {@link #MSG_NEXT},
+ * {@link #MSG_PREVIOUS}, {@link #MSG_QUERY_STATE}, {@link #MSG_SUBSCRIBE},
+ * {@link #MSG_UNSUBSCRIBE}. Set {@code replyTo} to receive replies.
+ *
+ * Replies: {@link #MSG_STATE}, {@link #MSG_SWITCH_COMPLETED}, {@link #MSG_ERROR}.
+ * Subscribers receive {@link #MSG_SWITCH_COMPLETED} with {@code arg1 == 0} for every
+ * switch, including ones made from the UI.
+ */
+public class CameraControlService extends Service {
+    private static final String TAG = "CameraControlService";
+    private static final int LATENCY_WINDOW = 32;
+
+    // Commands
+    public static final int MSG_SWITCH_TO_ID = 1;
+    public static final int MSG_NEXT = 2;
+    public static final int MSG_PREVIOUS = 3;
+    public static final int MSG_QUERY_STATE = 4;
+    public static final int MSG_SUBSCRIBE = 5;
+    public static final int MSG_UNSUBSCRIBE = 6;
+
+    // Replies and events
+    public static final int MSG_STATE = 100;
+    public static final int MSG_SWITCH_COMPLETED = 101;
+    public static final int MSG_ERROR = 102;
+
+    // Bundle keys
+    public static final String KEY_CAMERA_ID = "camera_id";
+    public static final String KEY_CAMERA_NAME = "camera_name";
+    public static final String KEY_CAMERA_INDEX = "camera_index";
+    public static final String KEY_CAMERA_IDS = "camera_ids";
+    /** Optional: client's {@link SystemClock#uptimeMillis()} when the command was sent */
+    public static final String KEY_SENT_AT = "sent_at";
+    /** Time from command sent (or received, if no sent_at) until the new camera delivered a frame */
+    public static final String KEY_LATENCY_MS = "latency_ms";
+    public static final String KEY_AVG_LATENCY_MS = "avg_latency_ms";
+    public static final String KEY_MAX_LATENCY_MS = "max_latency_ms";
+    public static final String KEY_ERROR = "error";
+    /** Shutter-to-saved latency of the last photo, and average/max over recent photos */
+    public static final String KEY_CAPTURE_LATENCY_MS = "capture_latency_ms";
+    public static final String KEY_CAPTURE_AVG_LATENCY_MS = "capture_avg_latency_ms";
+    public static final String KEY_CAPTURE_MAX_LATENCY_MS = "capture_max_latency_ms";
+    /** Average shutter-to-captured latency, before the JPEG is written */
+    public static final String KEY_CAPTURE_AVG_SHUTTER_LAG_MS = "capture_avg_shutter_lag_ms";
+    /** Photos reserved, in flight or waiting to be written, and the queue depth */
+    public static final String KEY_PENDING_SAVES = "pending_saves";
+    public static final String KEY_SAVE_QUEUE_DEPTH = "save_queue_depth";
+
+    /**
+     * Implemented by the activity that owns the camera.
+     *
+     * Switch methods return false if the switch cannot be started; the callback is
+     * then never called. Otherwise exactly one callback method is called, once the
+     * new camera delivers frames or the switch fails.
+     */
+    public interface Controller {
+        boolean switchToCameraId(String cameraId, SwitchCallback callback);
+
+        boolean switchToNextCamera(SwitchCallback callback);
+
+        boolean switchToPreviousCamera(SwitchCallback callback);
+
+        /** Current camera state, using the KEY_CAMERA_* keys */
+        Bundle getCameraState();
+    }
+
+    /**
+     * Outcome of one switch request
+     */
+    public interface SwitchCallback {
+        void onSwitchCompleted(Bundle state);
+
+        void onSwitchFailed(String reason);
+    }
+
+    private static class PendingCommand implements SwitchCallback {
+        final Messenger replyTo;
+        final int sequence;
+        final long startedAt;
+
+        PendingCommand(Messenger replyTo, int sequence, long startedAt) {
+            this.replyTo = replyTo;
+            this.sequence = sequence;
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public void onSwitchCompleted(Bundle state) {
+            long latencyMs = SystemClock.uptimeMillis() - startedAt;
+            switchLatency.record(latencyMs);
+            Bundle reply = new Bundle(state);
+            reply.putLong(KEY_LATENCY_MS, latencyMs);
+            putLatencySummary(reply);
+            send(replyTo, MSG_SWITCH_COMPLETED, sequence, reply);
+        }
+
+        @Override
+        public void onSwitchFailed(String reason) {
+            sendError(replyTo, sequence, reason);
+        }
+    }
+
+    // All static state is only touched on the main thread
+    private static Controller controller;
+    private static final List<Messenger> subscribers = new ArrayList<>();
+    private static final LatencyStats switchLatency = new LatencyStats(LATENCY_WINDOW);
+
+    private final Messenger messenger = new Messenger(
+            new Handler(Looper.getMainLooper(), this::handleCommand));
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return messenger.getBinder();
+    }
+
+    public static void setController(Controller newController) {
+        controller = newController;
+    }
+
+    /**
+     * The controller must fail its outstanding switch callbacks itself
+     */
+    public static void clearController(Controller oldController) {
+        if (controller == oldController) {
+            controller = null;
+        }
+    }
+
+    private boolean handleCommand(Message msg) {
+        Messenger replyTo = msg.replyTo;
+        int sequence = msg.arg1;
+
+        switch (msg.what) {
+            case MSG_SUBSCRIBE:
+                if (replyTo != null && !subscribers.contains(replyTo)) {
+                    subscribers.add(replyTo);
+                }
+                sendState(replyTo, sequence);
+                return true;
+            case MSG_UNSUBSCRIBE:
+                subscribers.remove(replyTo);
+                return true;
+            case MSG_QUERY_STATE:
+                sendState(replyTo, sequence);
+                return true;
+            case MSG_SWITCH_TO_ID:
+            case MSG_NEXT:
+            case MSG_PREVIOUS:
+                break;
+            default:
+                sendError(replyTo, sequence, "Unknown command " + msg.what);
+                return true;
+        }
+
+        if (controller == null) {
+            sendError(replyTo, sequence, "Camera switcher not running");
+            return true;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long startedAt = now;
+        Bundle data = msg.peekData();
+        if (data != null) {
+            long sentAt = data.getLong(KEY_SENT_AT, 0);
+            if (sentAt > 0 && sentAt <= now) {
+                startedAt = sentAt;
+            }
+        }
+
+        PendingCommand command = new PendingCommand(replyTo, sequence, startedAt);
+        boolean accepted;
+        if (msg.what == MSG_SWITCH_TO_ID) {
+            String cameraId = data != null ? data.getString(KEY_CAMERA_ID) : null;
+            accepted = cameraId != null && controller.switchToCameraId(cameraId, command);
+        } else if (msg.what == MSG_NEXT) {
+            accepted = controller.switchToNextCamera(command);
+        } else {
+            accepted = controller.switchToPreviousCamera(command);
+        }
+
+        if (!accepted) {
+            sendError(replyTo, sequence, "Cannot switch camera");
+        }
+        return true;
+    }
+
+    /**
+     * Called by the controller after every completed switch, to notify subscribers
+     */
+    public static void broadcastSwitchCompleted(Bundle state) {
+        Bundle event = new Bundle(state);
+        putLatencySummary(event);
+        Iterator<Messenger> it = subscribers.iterator();
+        while (it.hasNext()) {
+            if (!send(it.next(), MSG_SWITCH_COMPLETED, 0, event)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void sendState(Messenger replyTo, int sequence) {
+        if (controller == null) {
+            sendError(replyTo, sequence, "Camera switcher not running");
+            return;
+        }
+        Bundle state = new Bundle(controller.getCameraState());
+        putLatencySummary(state);
+        send(replyTo, MSG_STATE, sequence, state);
+    }
+
+    private static void sendError(Messenger replyTo, int sequence, String error) {
+        Bundle data = new Bundle();
+        data.putString(KEY_ERROR, error);
+        send(replyTo, MSG_ERROR, sequence, data);
+    }
+
+    private static void putLatencySummary(Bundle bundle) {
+        bundle.putLong(KEY_AVG_LATENCY_MS, switchLatency.getAverageMs());
+        bundle.putLong(KEY_MAX_LATENCY_MS, switchLatency.getMaxMs());
+    }
+
+    private static boolean send(Messenger target, int what, int sequence, Bundle data) {
+        if (target == null) return true;
+        Message reply = Message.obtain(null, what, sequence, 0);
+        reply.setData(data);
+        try {
+            target.send(reply);
+            return true;
+        } catch (RemoteException e) {
+            Log.w(TAG, "Client went away", e);
+            return false;
+        }
+    }
+}
@@ -1,8 +1,25 @@
 package com.cameraswitcher.app;
 
+import android.hardware.camera2.CameraCharacteristics;
+
 import androidx.camera.core.CameraSelector;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
 public class CameraInfo {
+    // Feature bits: bits 0-31 hold REQUEST_AVAILABLE_CAPABILITIES values, flags start at bit 32
+    public static final long FLAG_FACING_FRONT = 1L << 32;
+    public static final long FLAG_FACING_BACK = 1L << 33;
+    public static final long FLAG_TYPE_BUILT_IN = 1L << 34;
+    public static final long FLAG_TYPE_USB = 1L << 35;
+    public static final long FLAG_TYPE_BLUETOOTH = 1L << 36;
+    public static final long FLAG_LOGICAL = 1L << 37;   // Logical multi-camera backed by several lenses
+    public static final long FLAG_PHYSICAL = 1L << 38;  // Lens that is also part of a logical camera
+    public static final long FLAG_FPS_60 = 1L << 39;    // Has an AE target FPS range reaching 60
+    public static final long FLAG_FACING_EXTERNAL = 1L << 40;  // USB or Bluetooth camera, facing unknown
+
     public String cameraId;
     public String defaultName;
     public String displayName;  // Will be set from preferences
@@ -10,6 +27,9 @@ public class CameraInfo {
     public String cameraType;  // "Built-in", "USB", "Bluetooth", etc.
     public float focalLength;
     public int[] capabilities;
+    public Set<String> physicalCameraIds;  // Only set for logical multi-cameras
+    public Map<String, Float> physicalZoomRatios;  // Zoom ratio per physical lens, ascending
+    public long featureBits;  // Capabilities and FLAG_* values, see compileFeatureBits()
     
     public CameraInfo(String cameraId, String defaultName, int lensFacing, String cameraType) {
         this.cameraId = cameraId;
@@ -19,6 +39,9 @@ public class CameraInfo {
         this.cameraType = cameraType;
         this.focalLength = 0f;
         this.capabilities = new int[0];
+        this.physicalCameraIds = Collections.emptySet();
+        this.physicalZoomRatios = Collections.emptyMap();
+        this.featureBits = compileFeatureBits();
     }
     
     public CameraInfo(String cameraId, String defaultName, int lensFacing, String cameraType, 
@@ -30,5 +53,53 @@ public class CameraInfo {
         this.cameraType = cameraType;
         this.focalLength = focalLength;
         this.capabilities = capabilities != null ? capabilities : new int[0];
+        this.physicalCameraIds = Collections.emptySet();
+        this.physicalZoomRatios = Collections.emptyMap();
+        this.featureBits = compileFeatureBits();
+    }
+    
+    /**
+     * Bit for a REQUEST_AVAILABLE_CAPABILITIES value, for use in registry queries
+     */
+    public static long capabilityBit(int capability) {
+        return capability >= 0 && capability < 32 ? 1L << capability : 0L;
+    }
+    
+    /**
+     * True if this camera has every bit in requiredBits
+     */
+    public boolean hasFeatures(long requiredBits) {
+        return (featureBits & requiredBits) == requiredBits;
+    }
+    
+    /**
+     * Build the feature bits from capabilities, facing and camera type.
+     * Flags that need other cameras or extra characteristics are added during discovery.
+     */
+    private long compileFeatureBits() {
+        long bits = 0;
+        for (int capability : capabilities) {
+            bits |= capabilityBit(capability);
+        }
+        if ("Built-in".equals(cameraType)) {
+            bits |= FLAG_TYPE_BUILT_IN;
+            // lensFacing is only meaningful for built-in cameras
+            if (lensFacing == CameraSelector.LENS_FACING_FRONT) {
+                bits |= FLAG_FACING_FRONT;
+            } else if (lensFacing == CameraSelector.LENS_FACING_BACK) {
+                bits |= FLAG_FACING_BACK;
+            }
+        } else {
+            bits |= FLAG_FACING_EXTERNAL;
+            if ("USB".equals(cameraType)) {
+                bits |= FLAG_TYPE_USB;
+            } else if ("Bluetooth".equals(cameraType)) {
+                bits |= FLAG_TYPE_BLUETOOTH;
+            }
+        }
+        if ((bits & capabilityBit(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_LOGICAL_MULTI_CAMERA)) != 0) {
+            bits |= FLAG_LOGICAL;
+        }
+        return bits;
     }
 }
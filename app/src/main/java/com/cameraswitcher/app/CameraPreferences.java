@@ -3,11 +3,33 @@ package com.cameraswitcher.app;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
 public class CameraPreferences {
     private static final String PREFS_NAME = "camera_preferences";
     private static final String PREFIX_CAMERA_NAME = "camera_name_";
+    private static final String KEY_SAVE_QUEUE_DEPTH = "save_queue_depth";
+    private static final String KEY_CONTINUOUS_LENS_MODE = "continuous_lens_mode";
+    public static final int DEFAULT_SAVE_QUEUE_DEPTH = 4;
+    public static final int MAX_SAVE_QUEUE_DEPTH = 16;
     
     private SharedPreferences prefs;
+    // SharedPreferences only holds listeners weakly, so keep the wrappers here
+    private final Map<OnCameraNameChangedListener, SharedPreferences.OnSharedPreferenceChangeListener>
+            listeners = new HashMap<>();
+    
+    /**
+     * Notified when a camera is renamed from any screen
+     */
+    public interface OnCameraNameChangedListener {
+        /**
+         * customName is null when the custom name was removed.
+         * cameraId is null when all names may have changed at once.
+         */
+        void onCameraNameChanged(String cameraId, String customName);
+    }
     
     public CameraPreferences(Context context) {
         prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
@@ -17,7 +39,35 @@ public class CameraPreferences {
      * Get custom name for a camera, or return default if not set
      */
     public String getCameraName(String cameraId, String defaultName) {
-        return prefs.getString(PREFIX_CAMERA_NAME + cameraId, defaultName);
+        return read(() -> prefs.getString(PREFIX_CAMERA_NAME + cameraId, defaultName));
+    }
+    
+    /**
+     * Every read goes through here: whichever comes first blocks until the
+     * preferences file has been loaded from disk, so stalls are attributed to it
+     */
+    private static <T> T read(Supplier<T> getter) {
+        StallWatchdog.Phase previousPhase = StallWatchdog.get().enterPhase(StallWatchdog.Phase.PREFERENCES_READ);
+        try {
+            return getter.get();
+        } finally {
+            StallWatchdog.get().exitPhase(previousPhase);
+        }
+    }
+    
+    /**
+     * All custom names, keyed by camera ID
+     */
+    public Map<String, String> getCameraNames() {
+        Map<String, ?> all = read(prefs::getAll);
+        Map<String, String> names = new HashMap<>();
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            if (entry.getKey().startsWith(PREFIX_CAMERA_NAME) && entry.getValue() != null) {
+                names.put(entry.getKey().substring(PREFIX_CAMERA_NAME.length()),
+                        entry.getValue().toString());
+            }
+        }
+        return names;
     }
     
     /**
@@ -34,6 +84,72 @@ public class CameraPreferences {
         prefs.edit().remove(PREFIX_CAMERA_NAME + cameraId).apply();
     }
     
+    /**
+     * Save several names in one write. A null or empty name removes the custom name.
+     */
+    public void setCameraNames(Map<String, String> names) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            String name = entry.getValue();
+            if (name == null || name.isEmpty()) {
+                editor.remove(PREFIX_CAMERA_NAME + entry.getKey());
+            } else {
+                editor.putString(PREFIX_CAMERA_NAME + entry.getKey(), name);
+            }
+        }
+        editor.apply();
+    }
+    
+    /**
+     * Listen for camera renames. Callbacks arrive on the main thread.
+     */
+    public void registerListener(OnCameraNameChangedListener listener) {
+        SharedPreferences.OnSharedPreferenceChangeListener wrapper = (sharedPrefs, key) -> {
+            if (key == null) {
+                // Preferences were cleared (API 30+)
+                listener.onCameraNameChanged(null, null);
+            } else if (key.startsWith(PREFIX_CAMERA_NAME)) {
+                listener.onCameraNameChanged(key.substring(PREFIX_CAMERA_NAME.length()),
+                        read(() -> sharedPrefs.getString(key, null)));
+            }
+        };
+        listeners.put(listener, wrapper);
+        prefs.registerOnSharedPreferenceChangeListener(wrapper);
+    }
+    
+    public void unregisterListener(OnCameraNameChangedListener listener) {
+        SharedPreferences.OnSharedPreferenceChangeListener wrapper = listeners.remove(listener);
+        if (wrapper != null) {
+            prefs.unregisterOnSharedPreferenceChangeListener(wrapper);
+        }
+    }
+    
+    /**
+     * Get how many captured photos may wait to be written to disk
+     */
+    public int getSaveQueueDepth() {
+        return read(() -> prefs.getInt(KEY_SAVE_QUEUE_DEPTH, DEFAULT_SAVE_QUEUE_DEPTH));
+    }
+    
+    /**
+     * Set how many captured photos may wait to be written to disk
+     */
+    public void setSaveQueueDepth(int depth) {
+        prefs.edit().putInt(KEY_SAVE_QUEUE_DEPTH,
+                Math.max(1, Math.min(MAX_SAVE_QUEUE_DEPTH, depth))).apply();
+    }
+    
+    /**
+     * Whether lenses of a multi-lens camera are switched by zooming instead of rebinding
+     */
+    public boolean isContinuousLensMode() {
+        return read(() -> prefs.getBoolean(KEY_CONTINUOUS_LENS_MODE, true));
+    }
+    
+    public void setContinuousLensMode(boolean enabled) {
+        prefs.edit().putBoolean(KEY_CONTINUOUS_LENS_MODE, enabled).apply();
+    }
+    
     /**
      * Clear all custom camera names
      */
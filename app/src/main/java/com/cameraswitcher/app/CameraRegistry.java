@@ -0,0 +1,56 @@
+package com.cameraswitcher.app;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Index of discovered cameras by feature bit.
+ *
+ * For every bit of {@link CameraInfo#featureBits} the registry keeps the set of
+ * camera positions that have it, so a query is a handful of bitset ANDs instead
+ * of a rescan of the cameras or their characteristics.
+ */
+public class CameraRegistry {
+    private final BitSet[] positionsByBit = new BitSet[Long.SIZE];
+    private final BitSet allPositions = new BitSet();
+
+    public CameraRegistry() {
+        for (int bit = 0; bit < positionsByBit.length; bit++) {
+            positionsByBit[bit] = new BitSet();
+        }
+    }
+
+    /**
+     * Re-index after discovery. Positions match the order of the given list.
+     */
+    public void rebuild(List<CameraInfo> discovered) {
+        allPositions.clear();
+        for (BitSet positions : positionsByBit) {
+            positions.clear();
+        }
+
+        for (int position = 0; position < discovered.size(); position++) {
+            long bits = discovered.get(position).featureBits;
+            allPositions.set(position);
+            while (bits != 0) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                positionsByBit[bit].set(position);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Positions of the cameras that have every bit in requiredBits.
+     * A mask of 0 matches all cameras. The returned set is a copy.
+     */
+    public BitSet query(long requiredBits) {
+        BitSet result = (BitSet) allPositions.clone();
+        while (requiredBits != 0 && !result.isEmpty()) {
+            int bit = Long.numberOfTrailingZeros(requiredBits);
+            result.and(positionsByBit[bit]);
+            requiredBits &= requiredBits - 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package com.cameraswitcher.app;
+
+/**
+ * Rolling window of latency samples in milliseconds.
+ * Thread-safe; keeps the last N samples.
+ */
+public class LatencyStats {
+    private final long[] samples;
+    private int next = 0;
+    private int size = 0;
+    private long lastMs = -1;
+
+    public LatencyStats(int windowSize) {
+        samples = new long[Math.max(1, windowSize)];
+    }
+
+    /**
+     * Record a new sample
+     */
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+        lastMs = latencyMs;
+    }
+
+    /**
+     * Most recent sample, or -1 if nothing has been recorded
+     */
+    public synchronized long getLastMs() {
+        return lastMs;
+    }
+
+    /**
+     * Average over the current window, or -1 if empty
+     */
+    public synchronized long getAverageMs() {
+        if (size == 0) return -1;
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += samples[i];
+        }
+        return sum / size;
+    }
+
+    /**
+     * Maximum over the current window, or -1 if empty
+     */
+    public synchronized long getMaxMs() {
+        if (size == 0) return -1;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,173 @@
+package com.cameraswitcher.app;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.os.Build;
+import android.util.Log;
+import android.util.Range;
+import android.util.SizeF;
+
+import androidx.annotation.RequiresApi;
+import androidx.camera.core.Camera;
+import androidx.camera.core.ZoomState;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drives lens changes on a logical multi-camera through the zoom ratio.
+ *
+ * Instead of rebinding to another camera, the zoom ratio of the single bound
+ * logical camera is changed and the camera HAL switches physical lenses on its own,
+ * which takes effect within a frame. Needs Android 11 (API 30): before that the
+ * zoom ratio is a digital crop and never changes the lens.
+ */
+public class LensZoomController {
+    private static final String TAG = "LensZoomController";
+    // Stops closer than this are treated as the same lens
+    private static final float MIN_STOP_GAP = 0.05f;
+
+    private Camera camera;
+    private CameraInfo cameraInfo;
+    private final List<Float> zoomStops = new ArrayList<>();
+
+    /**
+     * Zoom ratio of each physical camera on the logical camera, sorted by ratio.
+     *
+     * The widest lens maps to the lower end of the logical camera's
+     * CONTROL_ZOOM_RATIO_RANGE, the other lenses scale from there by focal length
+     * divided by sensor width, so lenses with different sensor sizes compare by
+     * field of view.
+     */
+    @RequiresApi(Build.VERSION_CODES.R)
+    public static Map<String, Float> computeZoomRatios(CameraManager cameraManager,
+                                                       CameraCharacteristics logical,
+                                                       Set<String> physicalCameraIds) {
+        Map<String, Float> result = new LinkedHashMap<>();
+        Range<Float> zoomRange = logical.get(CameraCharacteristics.CONTROL_ZOOM_RATIO_RANGE);
+        if (zoomRange == null) return result;
+
+        List<Map.Entry<String, Float>> entries = new ArrayList<>();
+        for (String physicalId : physicalCameraIds) {
+            try {
+                float focal = equivalentFocalLength(cameraManager.getCameraCharacteristics(physicalId));
+                if (focal > 0f) {
+                    entries.add(new AbstractMap.SimpleEntry<>(physicalId, focal));
+                }
+            } catch (CameraAccessException | IllegalArgumentException e) {
+                Log.w(TAG, "Cannot read physical camera " + physicalId, e);
+            }
+        }
+        if (entries.isEmpty()) return result;
+        Collections.sort(entries, (a, b) -> Float.compare(a.getValue(), b.getValue()));
+
+        float widest = entries.get(0).getValue();
+        float minRatio = zoomRange.getLower();
+        for (Map.Entry<String, Float> entry : entries) {
+            result.put(entry.getKey(), minRatio * entry.getValue() / widest);
+        }
+        return result;
+    }
+
+    private static float equivalentFocalLength(CameraCharacteristics characteristics) {
+        float[] focalLengths = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        if (focalLengths == null || focalLengths.length == 0) return 0f;
+        SizeF sensorSize = characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+        if (sensorSize == null || sensorSize.getWidth() <= 0f) {
+            return focalLengths[0];
+        }
+        return focalLengths[0] / sensorSize.getWidth();
+    }
+
+    /**
+     * Take over zoom on a freshly bound logical camera
+     */
+    public void attach(Camera camera, CameraInfo cameraInfo) {
+        this.camera = camera;
+        this.cameraInfo = cameraInfo;
+        zoomStops.clear();
+
+        float minRatio = 1f;
+        float maxRatio = 1f;
+        ZoomState zoomState = camera.getCameraInfo().getZoomState().getValue();
+        if (zoomState != null) {
+            minRatio = zoomState.getMinZoomRatio();
+            maxRatio = zoomState.getMaxZoomRatio();
+        }
+
+        // Ratios were sorted at discovery, clamping keeps them sorted
+        for (float ratio : cameraInfo.physicalZoomRatios.values()) {
+            float stop = Math.max(minRatio, Math.min(maxRatio, ratio));
+            if (zoomStops.isEmpty() || stop - zoomStops.get(zoomStops.size() - 1) > MIN_STOP_GAP) {
+                zoomStops.add(stop);
+            }
+        }
+        if (zoomStops.isEmpty()) {
+            zoomStops.add(1f);
+        }
+    }
+
+    public void detach() {
+        camera = null;
+        cameraInfo = null;
+        zoomStops.clear();
+    }
+
+    public boolean isActive() {
+        return camera != null;
+    }
+
+    /**
+     * True if selecting the given camera can be done by zooming the bound camera
+     */
+    public boolean canReach(CameraInfo target) {
+        return isActive() && (target.cameraId.equals(cameraInfo.cameraId)
+                || cameraInfo.physicalZoomRatios.containsKey(target.cameraId));
+    }
+
+    /**
+     * Zoom to the lens of the given camera: 1x for the logical camera itself.
+     * Only valid while {@link #canReach(CameraInfo)} is true for the target.
+     */
+    public ListenableFuture<Void> zoomTo(CameraInfo target) {
+        Float ratio = cameraInfo.physicalZoomRatios.get(target.cameraId);
+        return setZoomRatio(ratio != null ? ratio : 1f);
+    }
+
+    /**
+     * Preset zoom stops, one per distinct physical lens, in ascending order
+     */
+    public List<Float> getZoomStops() {
+        return Collections.unmodifiableList(zoomStops);
+    }
+
+    /**
+     * Returns the camera's zoom future, or null if no camera is attached
+     */
+    public ListenableFuture<Void> setZoomRatio(float ratio) {
+        if (!isActive()) return null;
+        ZoomState zoomState = camera.getCameraInfo().getZoomState().getValue();
+        if (zoomState != null) {
+            ratio = Math.max(zoomState.getMinZoomRatio(), Math.min(zoomState.getMaxZoomRatio(), ratio));
+        }
+        return camera.getCameraControl().setZoomRatio(ratio);
+    }
+
+    /**
+     * Apply a pinch gesture scale factor to the current zoom ratio
+     */
+    public void scaleZoom(float scaleFactor) {
+        if (!isActive()) return;
+        ZoomState zoomState = camera.getCameraInfo().getZoomState().getValue();
+        float current = zoomState != null ? zoomState.getZoomRatio() : 1f;
+        setZoomRatio(current * scaleFactor);
+    }
+}
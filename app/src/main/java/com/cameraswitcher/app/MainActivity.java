@@ -3,27 +3,44 @@ package com.cameraswitcher.app;
 import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Range;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ExperimentalZeroShutterLag;
+import androidx.camera.core.ImageCapture;
+import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
@@ -32,38 +49,142 @@ import androidx.core.content.ContextCompat;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity
+        implements CameraControlService.Controller, CameraPreferences.OnCameraNameChangedListener {
     private static final String TAG = "MainActivity";
     private static final int PERMISSION_REQUEST_CODE = 100;
+    private static final long FIRST_FRAME_TIMEOUT_MS = 3000;
+    private static final int CAPTURE_LATENCY_WINDOW = 32;
+
+    // Strip filter presets, cycled by the filter button
+    private static final String[] FILTER_LABELS = {
+            "All", "Back", "Front", "RAW", "Manual", "Back RAW + Manual", "60 fps", "Multi-lens", "External"
+    };
+    private static final long[] FILTER_MASKS = {
+            0L,
+            CameraInfo.FLAG_FACING_BACK,
+            CameraInfo.FLAG_FACING_FRONT,
+            CameraInfo.capabilityBit(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_RAW),
+            CameraInfo.capabilityBit(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_SENSOR),
+            CameraInfo.FLAG_FACING_BACK
+                    | CameraInfo.capabilityBit(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_RAW)
+                    | CameraInfo.capabilityBit(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_SENSOR),
+            CameraInfo.FLAG_FPS_60,
+            CameraInfo.FLAG_LOGICAL,
+            CameraInfo.FLAG_FACING_EXTERNAL
+    };
 
     private PreviewView previewView;
+    private SwitchTransition switchTransition;
     private ProcessCameraProvider cameraProvider;
     private Camera currentCamera;
+    private CameraInfo boundCameraInfo;  // Camera actually bound, may differ from the selected lens
+    private final LensZoomController lensZoomController = new LensZoomController();
+    private CameraInfo pendingSwitchTarget;  // Latest requested camera, bound by the queued provider callback
+    // Callbacks of requests coalesced into the queued bind, and of the bind waiting for its first frame
+    private final List<CameraControlService.SwitchCallback> queuedSwitchCallbacks = new ArrayList<>();
+    private final List<CameraControlService.SwitchCallback> activeSwitchCallbacks = new ArrayList<>();
+    private boolean awaitingFirstFrame = false;
+    private boolean streamWentIdle = false;  // Ignore STREAMING left over from the outgoing camera
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable firstFrameTimeout = this::onFirstFrameTimeout;
+    private ImageCapture imageCapture;
+    private PhotoSaveQueue photoSaveQueue;
+    // Kept here so replacing the queue does not reset the photo metrics
+    private final LatencyStats shutterToCaptured = new LatencyStats(CAPTURE_LATENCY_WINDOW);
+    private final LatencyStats shutterToSaved = new LatencyStats(CAPTURE_LATENCY_WINDOW);
+    private ExecutorService captureExecutor;
     private List<CameraInfo> availableCameras = new ArrayList<>();
+    private final CameraRegistry cameraRegistry = new CameraRegistry();  // Feature index over availableCameras
+    private int activeFilter = 0;
     private int currentCameraIndex = 0;
     private CameraPreferences cameraPreferences;
     private LinearLayout cameraButtonsContainer;
+    private LinearLayout zoomStopsContainer;
+    private final HashMap<String, Button> cameraButtons = new HashMap<>();  // Strip buttons by camera ID
     private TextView currentCameraText;
+    // Set when USB or Bluetooth devices change; renames are applied by onCameraNameChanged instead
+    private boolean camerasDirty = false;
+    private final BroadcastReceiver deviceChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            camerasDirty = true;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Before anything else, so discovery and the first preferences load are watched
+        StallWatchdog.get().start(StallWatchdog.DEFAULT_THRESHOLD_MS);
         setContentView(R.layout.activity_main);
 
         previewView = findViewById(R.id.previewView);
+        ImageView switchOverlay = findViewById(R.id.switchOverlay);
+        switchTransition = new SwitchTransition(this, previewView, switchOverlay);
         cameraButtonsContainer = findViewById(R.id.cameraButtonsContainer);
+        zoomStopsContainer = findViewById(R.id.zoomStopsContainer);
         currentCameraText = findViewById(R.id.currentCameraText);
+
+        // Pinch to zoom drives lens changes in continuous lens mode
+        ScaleGestureDetector scaleDetector = new ScaleGestureDetector(this,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        lensZoomController.scaleZoom(detector.getScaleFactor());
+                        return true;
+                    }
+                });
+        previewView.setOnTouchListener((v, event) -> scaleDetector.onTouchEvent(event));
+        previewView.getPreviewStreamState().observe(this, this::onPreviewStreamStateChanged);
         
         ImageButton btnSettings = findViewById(R.id.btnSettings);
         btnSettings.setOnClickListener(v -> openSettings());
+        btnSettings.setOnLongClickListener(v -> {
+            exportStallReport();
+            return true;
+        });
+
+        Button btnFilter = findViewById(R.id.btnFilter);
+        btnFilter.setText(FILTER_LABELS[activeFilter]);
+        btnFilter.setOnClickListener(v -> {
+            activeFilter = (activeFilter + 1) % FILTER_LABELS.length;
+            btnFilter.setText(FILTER_LABELS[activeFilter]);
+            updateCameraButtons();
+        });
+
+        ImageButton btnCapture = findViewById(R.id.btnCapture);
+        btnCapture.setOnClickListener(v -> takePhoto());
 
         cameraPreferences = new CameraPreferences(this);
+        cameraPreferences.registerListener(this);
+
+        IntentFilter deviceFilter = new IntentFilter();
+        deviceFilter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        deviceFilter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        deviceFilter.addAction(BluetoothAdapter.ACTION_STATE_CHANGED);
+        deviceFilter.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
+        ContextCompat.registerReceiver(this, deviceChangeReceiver, deviceFilter,
+                ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        captureExecutor = Executors.newSingleThreadExecutor();
+        photoSaveQueue = createPhotoSaveQueue();
+
+        CameraControlService.setController(this);
 
         if (checkPermissions()) {
             initializeCamera();
@@ -72,16 +193,65 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        StallWatchdog.get().onActivityStarted();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // A backgrounded app is not expected to service the heartbeat
+        StallWatchdog.get().onActivityStopped();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
-        // Refresh camera list and names when returning from settings
         if (checkPermissions()) {
-            discoverCameras();
-            updateCameraButtons();
+            if (availableCameras.isEmpty()) {
+                // Permission was granted from system settings, or nothing was found before
+                camerasDirty = false;
+                initializeCamera();
+            } else if (camerasDirty) {
+                // Only rediscover when devices were plugged, unplugged or paired while we were away
+                camerasDirty = false;
+                discoverCameras();
+                updateCameraButtons();
+            }
+            // Continuous lens mode may have been toggled in settings
+            updateLensZoom();
+        }
+        // Save queue depth may have been changed in settings
+        if (photoSaveQueue.getDepth() != cameraPreferences.getSaveQueueDepth()) {
+            photoSaveQueue.shutdown();
+            photoSaveQueue = createPhotoSaveQueue();
         }
     }
 
+    private PhotoSaveQueue createPhotoSaveQueue() {
+        File photoDir = getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        if (photoDir == null) {
+            photoDir = new File(getFilesDir(), "Pictures");
+        }
+        // Photos reserved before a shutdown() are still reported, possibly after onDestroy
+        Context appContext = getApplicationContext();
+        return new PhotoSaveQueue(photoDir, cameraPreferences.getSaveQueueDepth(),
+                shutterToCaptured, shutterToSaved, new PhotoSaveQueue.Listener() {
+                    @Override
+                    public void onPhotoSaved(File file, long shutterToCapturedMs, long shutterToSavedMs) {
+                        Toast.makeText(appContext, "Saved " + file.getName()
+                                + " (" + shutterToSavedMs + " ms)", Toast.LENGTH_SHORT).show();
+                    }
+
+                    @Override
+                    public void onPhotoFailed(String reason, Exception e) {
+                        Toast.makeText(appContext, reason, Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
     private boolean checkPermissions() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
                 == PackageManager.PERMISSION_GRANTED;
@@ -109,12 +279,21 @@ public class MainActivity extends AppCompatActivity {
     private void initializeCamera() {
         discoverCameras();
         if (!availableCameras.isEmpty()) {
-            startCamera(availableCameras.get(0));
+            startCamera(availableCameras.get(0), null);
             updateCameraButtons();
         }
     }
 
     private void discoverCameras() {
+        StallWatchdog.Phase previousPhase = StallWatchdog.get().enterPhase(StallWatchdog.Phase.DISCOVERY);
+        try {
+            scanCameras();
+        } finally {
+            StallWatchdog.get().exitPhase(previousPhase);
+        }
+    }
+
+    private void scanCameras() {
         availableCameras.clear();
         CameraManager cameraManager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
 
@@ -126,6 +305,7 @@ public class MainActivity extends AppCompatActivity {
                 Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
                 int[] capabilitiesArray = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
                 float[] focalLengthsArray = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+                Range<Integer>[] fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
                 
                 String defaultName = "Unknown Camera";
                 int cameraType = CameraSelector.LENS_FACING_BACK;
@@ -174,6 +354,22 @@ public class MainActivity extends AppCompatActivity {
                 CameraInfo cameraInfo = new CameraInfo(cameraId, defaultName, cameraType, "Built-in", 
                                                       focalLength, capabilitiesArray);
                 cameraInfo.displayName = displayName;
+                if (fpsRanges != null) {
+                    for (Range<Integer> range : fpsRanges) {
+                        if (range.getUpper() >= 60) {
+                            cameraInfo.featureBits |= CameraInfo.FLAG_FPS_60;
+                            break;
+                        }
+                    }
+                }
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                        && cameraInfo.hasFeatures(CameraInfo.FLAG_LOGICAL)) {
+                    cameraInfo.physicalCameraIds = characteristics.getPhysicalCameraIds();
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                        cameraInfo.physicalZoomRatios = LensZoomController.computeZoomRatios(
+                                cameraManager, characteristics, cameraInfo.physicalCameraIds);
+                    }
+                }
                 availableCameras.add(cameraInfo);
                 
                 Log.d(TAG, "Found camera: " + displayName + " (ID: " + cameraId + ", Type: Built-in)");
@@ -190,11 +386,26 @@ public class MainActivity extends AppCompatActivity {
             Toast.makeText(this, "Error accessing cameras", Toast.LENGTH_SHORT).show();
         }
 
+        markPhysicalCameras();
+        cameraRegistry.rebuild(availableCameras);
+
         if (availableCameras.isEmpty()) {
             Toast.makeText(this, "No cameras found", Toast.LENGTH_LONG).show();
         }
     }
 
+    private void markPhysicalCameras() {
+        Set<String> physicalIds = new HashSet<>();
+        for (CameraInfo camera : availableCameras) {
+            physicalIds.addAll(camera.physicalCameraIds);
+        }
+        for (CameraInfo camera : availableCameras) {
+            if (physicalIds.contains(camera.cameraId)) {
+                camera.featureBits |= CameraInfo.FLAG_PHYSICAL;
+            }
+        }
+    }
+
     private void detectUSBCameras() {
         UsbManager usbManager = (UsbManager) getSystemService(Context.USB_SERVICE);
         if (usbManager != null) {
@@ -261,58 +472,321 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void startCamera(CameraInfo cameraInfo) {
+    /**
+     * Queue a bind of the given camera. The callback, if any, is told once the new
+     * camera delivers its first frame or the switch fails.
+     */
+    private void startCamera(CameraInfo cameraInfo, CameraControlService.SwitchCallback callback) {
         // Only start built-in cameras through CameraX
         // USB and Bluetooth cameras require different handling
         if (!"Built-in".equals(cameraInfo.cameraType)) {
             Toast.makeText(this, cameraInfo.displayName + " requires special setup", Toast.LENGTH_SHORT).show();
+            if (callback != null) {
+                callback.onSwitchFailed(cameraInfo.displayName + " requires special setup");
+            }
             return;
         }
+        if (callback != null) {
+            queuedSwitchCallbacks.add(callback);
+        }
         
+        // Switches are serialized on the main thread; requests that arrive before the
+        // queued bind runs are coalesced so only the latest camera gets bound
+        boolean bindQueued = pendingSwitchTarget != null;
+        pendingSwitchTarget = cameraInfo;
+        if (bindQueued) {
+            return;
+        }
+
         ListenableFuture<ProcessCameraProvider> cameraProviderFuture =
                 ProcessCameraProvider.getInstance(this);
 
         cameraProviderFuture.addListener(() -> {
-            try {
-                cameraProvider = cameraProviderFuture.get();
-                cameraProvider.unbindAll();
-
-                Preview preview = new Preview.Builder().build();
-                preview.setSurfaceProvider(previewView.getSurfaceProvider());
-
-                CameraSelector cameraSelector = new CameraSelector.Builder()
-                        .requireLensFacing(cameraInfo.lensFacing)
-                        .build();
-
-                currentCamera = cameraProvider.bindToLifecycle(
-                        this,
-                        cameraSelector,
-                        preview
-                );
-
-                // Find camera index by ID to avoid indexOf returning -1
-                int foundIndex = -1;
-                for (int i = 0; i < availableCameras.size(); i++) {
-                    if (availableCameras.get(i).cameraId.equals(cameraInfo.cameraId)) {
-                        foundIndex = i;
-                        break;
-                    }
+            if (currentCamera != null) {
+                // Freeze the outgoing frame to cover the gap until the new camera streams.
+                // Requests arriving while the snapshot is taken coalesce into this bind.
+                switchTransition.begin(() -> bindCamera(cameraProviderFuture));
+            } else {
+                bindCamera(cameraProviderFuture);
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    private void bindCamera(ListenableFuture<ProcessCameraProvider> cameraProviderFuture) {
+        // onDestroy has already failed the queued requests
+        if (isDestroyed()) return;
+        CameraInfo target = pendingSwitchTarget;
+        pendingSwitchTarget = null;
+        // A bind still waiting for its first frame is superseded, its requests finish with this one
+        activeSwitchCallbacks.addAll(queuedSwitchCallbacks);
+        queuedSwitchCallbacks.clear();
+        StallWatchdog.Phase previousPhase = StallWatchdog.get().enterPhase(StallWatchdog.Phase.BIND);
+        try {
+            cameraProvider = cameraProviderFuture.get();
+            cameraProvider.unbindAll();
+
+            Preview preview = new Preview.Builder().build();
+            preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+            imageCapture = buildImageCapture();
+
+            CameraSelector cameraSelector = buildCameraSelector(target);
+
+            currentCamera = cameraProvider.bindToLifecycle(
+                    this,
+                    cameraSelector,
+                    preview,
+                    imageCapture
+            );
+            Log.d(TAG, "Bound " + target.cameraId + ", ZSL supported: "
+                    + isZslSupported(currentCamera));
+            boundCameraInfo = target;
+            updateLensZoom();
+
+            // Find camera index by ID to avoid indexOf returning -1
+            int foundIndex = -1;
+            for (int i = 0; i < availableCameras.size(); i++) {
+                if (availableCameras.get(i).cameraId.equals(target.cameraId)) {
+                    foundIndex = i;
+                    break;
                 }
-                if (foundIndex >= 0) {
-                    currentCameraIndex = foundIndex;
+            }
+            if (foundIndex >= 0) {
+                currentCameraIndex = foundIndex;
+            }
+            updateCameraButtons();
+            Toast.makeText(this, "Switched to: " + target.displayName, Toast.LENGTH_SHORT).show();
+            // Completion is reported once the new camera streams
+            awaitFirstFrame();
+
+        } catch (ExecutionException | InterruptedException
+                 | IllegalArgumentException | IllegalStateException e) {
+            // bindToLifecycle throws when no camera matches or the use cases cannot be combined
+            Log.e(TAG, "Error starting camera", e);
+            Toast.makeText(this, "Error starting camera", Toast.LENGTH_SHORT).show();
+            failActiveSwitch("Error starting camera");
+            switchTransition.finish();
+        } finally {
+            StallWatchdog.get().exitPhase(previousPhase);
+        }
+    }
+
+    private void awaitFirstFrame() {
+        awaitingFirstFrame = true;
+        streamWentIdle = previewView.getPreviewStreamState().getValue() != PreviewView.StreamState.STREAMING;
+        mainHandler.removeCallbacks(firstFrameTimeout);
+        mainHandler.postDelayed(firstFrameTimeout, FIRST_FRAME_TIMEOUT_MS);
+    }
+
+    private void onPreviewStreamStateChanged(PreviewView.StreamState state) {
+        if (!awaitingFirstFrame) return;
+        if (state == PreviewView.StreamState.IDLE) {
+            streamWentIdle = true;
+        } else if (state == PreviewView.StreamState.STREAMING && streamWentIdle) {
+            completeActiveSwitch();
+        }
+    }
+
+    private void onFirstFrameTimeout() {
+        if (!awaitingFirstFrame) return;
+        // The IDLE update can be coalesced away, so trust a STREAMING state at this point
+        if (previewView.getPreviewStreamState().getValue() == PreviewView.StreamState.STREAMING) {
+            completeActiveSwitch();
+        } else {
+            failActiveSwitch("Camera did not start streaming");
+        }
+    }
+
+    private void completeActiveSwitch() {
+        awaitingFirstFrame = false;
+        mainHandler.removeCallbacks(firstFrameTimeout);
+        Bundle state = getCameraState();
+        for (CameraControlService.SwitchCallback callback : activeSwitchCallbacks) {
+            callback.onSwitchCompleted(state);
+        }
+        activeSwitchCallbacks.clear();
+        CameraControlService.broadcastSwitchCompleted(state);
+    }
+
+    private void failActiveSwitch(String reason) {
+        awaitingFirstFrame = false;
+        mainHandler.removeCallbacks(firstFrameTimeout);
+        for (CameraControlService.SwitchCallback callback : activeSwitchCallbacks) {
+            callback.onSwitchFailed(reason);
+        }
+        activeSwitchCallbacks.clear();
+    }
+
+    /**
+     * Select the camera by ID, falling back to any camera with the same facing
+     * if CameraX does not expose that ID
+     */
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private CameraSelector buildCameraSelector(CameraInfo target) {
+        return new CameraSelector.Builder()
+                .requireLensFacing(target.lensFacing)
+                .addCameraFilter(cameraInfos -> {
+                    List<androidx.camera.core.CameraInfo> matching = new ArrayList<>();
+                    for (androidx.camera.core.CameraInfo info : cameraInfos) {
+                        if (target.cameraId.equals(Camera2CameraInfo.from(info).getCameraId())) {
+                            matching.add(info);
+                        }
+                    }
+                    return matching.isEmpty() ? cameraInfos : matching;
+                })
+                .build();
+    }
+
+    /**
+     * Hand zoom to the lens controller when the bound camera is a multi-lens camera
+     * and continuous lens mode is on
+     */
+    private void updateLensZoom() {
+        // Before API 30 the zoom ratio is only a digital crop and never switches lenses
+        boolean enabled = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                && currentCamera != null && boundCameraInfo != null
+                && !boundCameraInfo.physicalZoomRatios.isEmpty()
+                && cameraPreferences.isContinuousLensMode();
+        if (enabled) {
+            lensZoomController.attach(currentCamera, boundCameraInfo);
+        } else {
+            if (lensZoomController.isActive()) {
+                lensZoomController.setZoomRatio(1f);
+            }
+            lensZoomController.detach();
+        }
+        updateZoomStops();
+    }
+
+    private void updateZoomStops() {
+        zoomStopsContainer.removeAllViews();
+        if (!lensZoomController.isActive()) {
+            zoomStopsContainer.setVisibility(View.GONE);
+            return;
+        }
+        zoomStopsContainer.setVisibility(View.VISIBLE);
+
+        for (float stop : lensZoomController.getZoomStops()) {
+            Button btn = new Button(this);
+            String label = String.format(Locale.US, "%.1f", stop);
+            if (label.endsWith(".0")) {
+                label = label.substring(0, label.length() - 2);
+            }
+            btn.setText(label + "x");
+            btn.setTextSize(12);
+            btn.setTextColor(0xFFFFFFFF);
+            btn.setAllCaps(false);
+            btn.setMinWidth(0);
+            btn.setMinimumWidth(0);
+            btn.setBackgroundResource(R.drawable.rounded_camera_button);
+            btn.setOnClickListener(v -> lensZoomController.setZoomRatio(stop));
+
+            LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
+                    (int) (48 * getResources().getDisplayMetrics().density), // 48dp
+                    (int) (36 * getResources().getDisplayMetrics().density)  // 36dp height
+            );
+            params.setMargins(4, 0, 4, 0);
+            btn.setLayoutParams(params);
+            zoomStopsContainer.addView(btn);
+        }
+    }
+
+    @OptIn(markerClass = ExperimentalZeroShutterLag.class)
+    private ImageCapture buildImageCapture() {
+        // CameraX falls back to minimize-latency mode on cameras without ZSL support
+        return new ImageCapture.Builder()
+                .setCaptureMode(ImageCapture.CAPTURE_MODE_ZERO_SHUTTER_LAG)
+                .build();
+    }
+
+    @OptIn(markerClass = ExperimentalZeroShutterLag.class)
+    private boolean isZslSupported(Camera camera) {
+        return camera.getCameraInfo().isZslSupported();
+    }
+
+    private void takePhoto() {
+        if (imageCapture == null || currentCamera == null) {
+            Toast.makeText(this, "Camera not ready", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // The queue may be replaced while this capture is in flight, keep the one holding the slot
+        final PhotoSaveQueue saveQueue = photoSaveQueue;
+        // Drop the shot rather than block when the save queue is full
+        if (!saveQueue.tryReserve()) {
+            Toast.makeText(this, "Still saving previous photos", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final long shutterAtMs = SystemClock.elapsedRealtime();
+        imageCapture.takePicture(captureExecutor, new ImageCapture.OnImageCapturedCallback() {
+            @Override
+            public void onCaptureSuccess(@NonNull ImageProxy image) {
+                long capturedAtMs = SystemClock.elapsedRealtime();
+                byte[] jpeg;
+                int rotationDegrees = image.getImageInfo().getRotationDegrees();
+                try {
+                    // Copy out and close right away so the ZSL ring buffer is not starved
+                    ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                    jpeg = new byte[buffer.remaining()];
+                    buffer.get(jpeg);
+                } finally {
+                    image.close();
                 }
-                updateCameraButtons();
-                Toast.makeText(this, "Switched to: " + cameraInfo.displayName, Toast.LENGTH_SHORT).show();
+                saveQueue.enqueue(jpeg, rotationDegrees, shutterAtMs, capturedAtMs);
+            }
 
-            } catch (ExecutionException | InterruptedException e) {
-                Log.e(TAG, "Error starting camera", e);
-                Toast.makeText(this, "Error starting camera", Toast.LENGTH_SHORT).show();
+            @Override
+            public void onError(@NonNull ImageCaptureException exception) {
+                saveQueue.release();
+                Log.e(TAG, "Error capturing photo", exception);
+                runOnUiThread(() -> Toast.makeText(MainActivity.this,
+                        "Error capturing photo", Toast.LENGTH_SHORT).show());
             }
-        }, ContextCompat.getMainExecutor(this));
+        });
+    }
+
+    /**
+     * Apply a rename from Settings to just the affected strip button
+     */
+    @Override
+    public void onCameraNameChanged(String cameraId, String customName) {
+        if (cameraId == null) {
+            // All names may have changed, re-read them and rebuild the strip
+            for (CameraInfo camera : availableCameras) {
+                camera.displayName = cameraPreferences.getCameraName(camera.cameraId, camera.defaultName);
+            }
+            updateCameraButtons();
+            return;
+        }
+
+        for (int i = 0; i < availableCameras.size(); i++) {
+            CameraInfo camera = availableCameras.get(i);
+            if (!camera.cameraId.equals(cameraId)) continue;
+
+            camera.displayName = customName != null ? customName : camera.defaultName;
+            Button btn = cameraButtons.get(cameraId);
+            if (btn != null) {
+                btn.setText(camera.displayName);
+            }
+            if (i == currentCameraIndex) {
+                currentCameraText.setText("Current: " + camera.displayName);
+            }
+            return;
+        }
     }
 
     private void updateCameraButtons() {
+        StallWatchdog.Phase previousPhase = StallWatchdog.get().enterPhase(StallWatchdog.Phase.STRIP_REBUILD);
+        try {
+            rebuildCameraButtons();
+        } finally {
+            StallWatchdog.get().exitPhase(previousPhase);
+        }
+    }
+
+    private void rebuildCameraButtons() {
         cameraButtonsContainer.removeAllViews();
+        cameraButtons.clear();
         
         if (availableCameras.isEmpty()) {
             currentCameraText.setText("No cameras found");
@@ -334,7 +808,7 @@ public class MainActivity extends AppCompatActivity {
         btnPrev.setBackgroundResource(R.drawable.rounded_nav_button);
         btnPrev.setPadding(8, 8, 8, 8);
         btnPrev.setContentDescription("Previous Camera");
-        btnPrev.setOnClickListener(v -> switchToPreviousCamera());
+        btnPrev.setOnClickListener(v -> switchToPreviousCamera(null));
         
         LinearLayout.LayoutParams prevParams = new LinearLayout.LayoutParams(
                 (int) (48 * getResources().getDisplayMetrics().density), // 48dp
@@ -344,8 +818,16 @@ public class MainActivity extends AppCompatActivity {
         btnPrev.setLayoutParams(prevParams);
         cameraButtonsContainer.addView(btnPrev);
         
-        // Create buttons for each camera
-        for (int i = 0; i < availableCameras.size(); i++) {
+        // Create buttons for each camera matching the active filter
+        BitSet visible = cameraRegistry.query(FILTER_MASKS[activeFilter]);
+        if (visible.isEmpty()) {
+            TextView noMatchText = new TextView(this);
+            noMatchText.setText("No " + FILTER_LABELS[activeFilter] + " cameras");
+            noMatchText.setTextColor(0xFFFFFFFF);
+            noMatchText.setPadding(16, 0, 16, 0);
+            cameraButtonsContainer.addView(noMatchText);
+        }
+        for (int i = visible.nextSetBit(0); i >= 0; i = visible.nextSetBit(i + 1)) {
             CameraInfo camera = availableCameras.get(i);
             Button btn = new Button(this);
             btn.setText(camera.displayName);
@@ -365,13 +847,7 @@ public class MainActivity extends AppCompatActivity {
             }
             
             final int cameraIndex = i;
-            btn.setOnClickListener(v -> {
-                if (cameraIndex >= 0 && cameraIndex < availableCameras.size()) {
-                    currentCameraIndex = cameraIndex;
-                    startCamera(availableCameras.get(cameraIndex));
-                    updateCameraButtons();
-                }
-            });
+            btn.setOnClickListener(v -> switchToCamera(cameraIndex, null));
             
             LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
                     LinearLayout.LayoutParams.WRAP_CONTENT,
@@ -381,6 +857,7 @@ public class MainActivity extends AppCompatActivity {
             btn.setLayoutParams(params);
             
             cameraButtonsContainer.addView(btn);
+            cameraButtons.put(camera.cameraId, btn);
         }
         
         // Add next navigation button with icon
@@ -389,7 +866,7 @@ public class MainActivity extends AppCompatActivity {
         btnNext.setBackgroundResource(R.drawable.rounded_nav_button);
         btnNext.setPadding(8, 8, 8, 8);
         btnNext.setContentDescription("Next Camera");
-        btnNext.setOnClickListener(v -> switchToNextCamera());
+        btnNext.setOnClickListener(v -> switchToNextCamera(null));
         
         LinearLayout.LayoutParams nextParams = new LinearLayout.LayoutParams(
                 (int) (48 * getResources().getDisplayMetrics().density), // 48dp
@@ -400,26 +877,135 @@ public class MainActivity extends AppCompatActivity {
         cameraButtonsContainer.addView(btnNext);
     }
 
-    private void switchToPreviousCamera() {
-        if (availableCameras.isEmpty()) return;
+    /**
+     * Single entry point for every camera switch: buttons, navigation and external control
+     */
+    private boolean switchToCamera(int index, CameraControlService.SwitchCallback callback) {
+        if (index < 0 || index >= availableCameras.size()) return false;
+        currentCameraIndex = index;
+        CameraInfo target = availableCameras.get(index);
+        if (pendingSwitchTarget == null && lensZoomController.canReach(target)) {
+            // Lens of the bound logical camera: let the HAL switch lenses instead of reopening
+            zoomToLens(target, callback);
+            updateCameraButtons();
+            return true;
+        }
+        startCamera(target, callback);
+        updateCameraButtons();
+        return true;
+    }
+
+    /**
+     * Report completion once the camera has applied the new zoom ratio
+     */
+    private void zoomToLens(CameraInfo target, CameraControlService.SwitchCallback callback) {
+        ListenableFuture<Void> zoomFuture = lensZoomController.zoomTo(target);
+        zoomFuture.addListener(() -> {
+            try {
+                zoomFuture.get();
+                Bundle state = getCameraState();
+                if (callback != null) {
+                    callback.onSwitchCompleted(state);
+                }
+                CameraControlService.broadcastSwitchCompleted(state);
+            } catch (ExecutionException | InterruptedException e) {
+                // Also reached when a newer zoom request replaced this one
+                Log.w(TAG, "Zoom to " + target.cameraId + " did not complete", e);
+                if (callback != null) {
+                    callback.onSwitchFailed("Zoom did not complete");
+                }
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    @Override
+    public boolean switchToPreviousCamera(CameraControlService.SwitchCallback callback) {
+        if (availableCameras.isEmpty()) return false;
         // Ensure currentCameraIndex is valid
         if (currentCameraIndex < 0 || currentCameraIndex >= availableCameras.size()) {
             currentCameraIndex = 0;
         }
-        currentCameraIndex = (currentCameraIndex - 1 + availableCameras.size()) % availableCameras.size();
-        startCamera(availableCameras.get(currentCameraIndex));
-        updateCameraButtons();
+        return switchToCamera(stepVisibleCamera(-1), callback);
     }
 
-    private void switchToNextCamera() {
-        if (availableCameras.isEmpty()) return;
+    @Override
+    public boolean switchToNextCamera(CameraControlService.SwitchCallback callback) {
+        if (availableCameras.isEmpty()) return false;
         // Ensure currentCameraIndex is valid
         if (currentCameraIndex < 0 || currentCameraIndex >= availableCameras.size()) {
             currentCameraIndex = 0;
         }
-        currentCameraIndex = (currentCameraIndex + 1) % availableCameras.size();
-        startCamera(availableCameras.get(currentCameraIndex));
-        updateCameraButtons();
+        return switchToCamera(stepVisibleCamera(1), callback);
+    }
+
+    /**
+     * Index of the next camera in the given direction that passes the active filter
+     */
+    private int stepVisibleCamera(int step) {
+        BitSet visible = cameraRegistry.query(FILTER_MASKS[activeFilter]);
+        if (visible.isEmpty()) {
+            visible = cameraRegistry.query(0L);
+        }
+        int count = availableCameras.size();
+        for (int n = 1; n <= count; n++) {
+            int candidate = ((currentCameraIndex + step * n) % count + count) % count;
+            if (visible.get(candidate)) {
+                return candidate;
+            }
+        }
+        return currentCameraIndex;
+    }
+
+    @Override
+    public boolean switchToCameraId(String cameraId, CameraControlService.SwitchCallback callback) {
+        for (int i = 0; i < availableCameras.size(); i++) {
+            if (availableCameras.get(i).cameraId.equals(cameraId)) {
+                return switchToCamera(i, callback);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Bundle getCameraState() {
+        Bundle state = new Bundle();
+        String[] ids = new String[availableCameras.size()];
+        for (int i = 0; i < availableCameras.size(); i++) {
+            ids[i] = availableCameras.get(i).cameraId;
+        }
+        state.putStringArray(CameraControlService.KEY_CAMERA_IDS, ids);
+        if (currentCameraIndex >= 0 && currentCameraIndex < availableCameras.size()) {
+            CameraInfo current = availableCameras.get(currentCameraIndex);
+            state.putString(CameraControlService.KEY_CAMERA_ID, current.cameraId);
+            state.putString(CameraControlService.KEY_CAMERA_NAME, current.displayName);
+            state.putInt(CameraControlService.KEY_CAMERA_INDEX, currentCameraIndex);
+        } else {
+            state.putInt(CameraControlService.KEY_CAMERA_INDEX, -1);
+        }
+
+        state.putLong(CameraControlService.KEY_CAPTURE_LATENCY_MS, shutterToSaved.getLastMs());
+        state.putLong(CameraControlService.KEY_CAPTURE_AVG_LATENCY_MS, shutterToSaved.getAverageMs());
+        state.putLong(CameraControlService.KEY_CAPTURE_MAX_LATENCY_MS, shutterToSaved.getMaxMs());
+        state.putLong(CameraControlService.KEY_CAPTURE_AVG_SHUTTER_LAG_MS,
+                shutterToCaptured.getAverageMs());
+        state.putInt(CameraControlService.KEY_PENDING_SAVES, photoSaveQueue.getPendingCount());
+        state.putInt(CameraControlService.KEY_SAVE_QUEUE_DEPTH, photoSaveQueue.getDepth());
+        return state;
+    }
+
+    private void exportStallReport() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        try {
+            File file = StallWatchdog.get().exportReport(dir);
+            Toast.makeText(this, StallWatchdog.get().getStallCount() + " stalls exported to "
+                    + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Error exporting stall report", e);
+            Toast.makeText(this, "Error exporting stall report", Toast.LENGTH_SHORT).show();
+        }
     }
 
     private void openSettings() {
@@ -430,8 +1016,18 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        CameraControlService.clearController(this);
+        mainHandler.removeCallbacks(firstFrameTimeout);
+        activeSwitchCallbacks.addAll(queuedSwitchCallbacks);
+        queuedSwitchCallbacks.clear();
+        failActiveSwitch("Camera switcher closed");
+        cameraPreferences.unregisterListener(this);
+        unregisterReceiver(deviceChangeReceiver);
         if (cameraProvider != null) {
             cameraProvider.unbindAll();
         }
+        captureExecutor.shutdown();
+        photoSaveQueue.shutdown();
+        StallWatchdog.get().stop();
     }
 }
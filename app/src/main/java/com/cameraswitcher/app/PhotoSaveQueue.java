@@ -0,0 +1,204 @@
+package com.cameraswitcher.app;
+
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes captured JPEGs to disk on a single background thread.
+ *
+ * The queue is bounded: a slot must be reserved with {@link #tryReserve()} before
+ * a capture is triggered, so a burst can never hold more than {@code depth}
+ * images in memory and the UI thread never waits on disk I/O.
+ *
+ * Latency stats are owned by the caller, so replacing the queue (e.g. to change
+ * its depth) keeps their history.
+ */
+public class PhotoSaveQueue {
+    private static final String TAG = "PhotoSaveQueue";
+
+    public interface Listener {
+        /** Called on the main thread once the JPEG is on disk */
+        void onPhotoSaved(File file, long shutterToCapturedMs, long shutterToSavedMs);
+
+        /** Called on the main thread when a reserved capture could not be saved */
+        void onPhotoFailed(String reason, Exception e);
+    }
+
+    private final File outputDir;
+    private final int depth;
+    private final Semaphore slots;
+    private final ThreadPoolExecutor writer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LatencyStats shutterToCaptured;
+    private final LatencyStats shutterToSaved;
+    private volatile Listener listener;  // Cleared once drained after shutdown(), so the owner is not leaked
+    private volatile boolean closed = false;
+
+    /**
+     * @param shutterToCaptured receives shutter press to image received latencies
+     * @param shutterToSaved receives shutter press to JPEG on disk latencies
+     */
+    public PhotoSaveQueue(File outputDir, int depth, LatencyStats shutterToCaptured,
+                          LatencyStats shutterToSaved, Listener listener) {
+        this.outputDir = outputDir;
+        this.depth = Math.max(1, depth);
+        this.shutterToCaptured = shutterToCaptured;
+        this.shutterToSaved = shutterToSaved;
+        this.listener = listener;
+        this.slots = new Semaphore(this.depth);
+        // Queue capacity matches the number of slots, so a reserved capture is never rejected
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.depth), r -> {
+                    Thread t = new Thread(r, "PhotoSaveQueue");
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+    }
+
+    /**
+     * Reserve a slot for an upcoming capture. Returns false if the queue is full
+     * or shut down.
+     */
+    public boolean tryReserve() {
+        return !closed && slots.tryAcquire();
+    }
+
+    /**
+     * Give back a reserved slot when the capture itself failed
+     */
+    public void release() {
+        slots.release();
+        stopIfDrained();
+    }
+
+    /**
+     * Queue JPEG bytes for writing. Consumes the slot reserved for this capture.
+     * Accepted after {@link #shutdown()} as long as the slot was reserved before it.
+     *
+     * @param rotationDegrees from the capture's ImageInfo, written as EXIF orientation
+     */
+    public void enqueue(byte[] jpeg, int rotationDegrees, long shutterAtMs, long capturedAtMs) {
+        shutterToCaptured.record(capturedAtMs - shutterAtMs);
+        try {
+            writer.execute(() -> write(jpeg, rotationDegrees, shutterAtMs, capturedAtMs));
+        } catch (RejectedExecutionException e) {
+            // Cannot happen while a slot is held, the writer only stops once all are back
+            Log.e(TAG, "Writer stopped with a reserved slot", e);
+            notifyFailed("Save queue closed", e);
+            release();
+        }
+    }
+
+    private void write(byte[] jpeg, int rotationDegrees, long shutterAtMs, long capturedAtMs) {
+        try {
+            if (!outputDir.exists() && !outputDir.mkdirs()) {
+                throw new IOException("Cannot create " + outputDir);
+            }
+            String name = "IMG_" + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US)
+                    .format(new Date()) + ".jpg";
+            File file = new File(outputDir, name);
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(jpeg);
+            }
+            writeOrientation(file, rotationDegrees);
+            long savedAtMs = SystemClock.elapsedRealtime();
+            long captureMs = capturedAtMs - shutterAtMs;
+            long totalMs = savedAtMs - shutterAtMs;
+            shutterToSaved.record(totalMs);
+            Log.d(TAG, "Saved " + file.getName() + " (shutter->captured " + captureMs
+                    + "ms, shutter->saved " + totalMs + "ms)");
+            // Read now: the listener is cleared once the last slot is back
+            Listener current = listener;
+            if (current != null) {
+                mainHandler.post(() -> current.onPhotoSaved(file, captureMs, totalMs));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving photo", e);
+            notifyFailed("Error saving photo", e);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * CameraX only reports the orientation of in-memory captures through ImageInfo,
+     * the HAL may not have written it into the JPEG. Rewrites the file only if it differs.
+     */
+    private static void writeOrientation(File file, int rotationDegrees) {
+        int orientation;
+        switch (rotationDegrees) {
+            case 90:
+                orientation = ExifInterface.ORIENTATION_ROTATE_90;
+                break;
+            case 180:
+                orientation = ExifInterface.ORIENTATION_ROTATE_180;
+                break;
+            case 270:
+                orientation = ExifInterface.ORIENTATION_ROTATE_270;
+                break;
+            default:
+                orientation = ExifInterface.ORIENTATION_NORMAL;
+                break;
+        }
+        try {
+            ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+            if (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED)
+                    != orientation) {
+                exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+                exif.saveAttributes();
+            }
+        } catch (IOException e) {
+            // The photo itself is saved, only its orientation tag may be wrong
+            Log.w(TAG, "Cannot write orientation to " + file.getName(), e);
+        }
+    }
+
+    private void notifyFailed(String reason, Exception e) {
+        Listener current = listener;
+        if (current != null) {
+            mainHandler.post(() -> current.onPhotoFailed(reason, e));
+        }
+    }
+
+    private void stopIfDrained() {
+        if (closed && slots.availablePermits() == depth) {
+            listener = null;
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * Number of captures reserved, in flight or waiting to be written
+     */
+    public int getPendingCount() {
+        return depth - slots.availablePermits();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Stop taking reservations. Captures that already hold a slot are still written
+     * and reported; the writer thread and listener are released after the last one.
+     */
+    public void shutdown() {
+        closed = true;
+        stopIfDrained();
+    }
+}
@@ -3,10 +3,12 @@ package com.cameraswitcher.app;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
@@ -14,29 +16,79 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.LinearLayout;
+import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SwitchCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class SettingsActivity extends AppCompatActivity {
+    private static final long AUTOSAVE_DELAY_MS = 500;
+
     private CameraPreferences cameraPreferences;
-    private LinearLayout cameraListContainer;
+    private RecyclerView cameraList;
+    private TextView emptyText;
+    private CameraItemAdapter adapter;
     private List<CameraItem> cameraItems = new ArrayList<>();
 
+    // Renames waiting for the debounced autosave, latest value per camera wins
+    private final Map<String, String> pendingRenames = new LinkedHashMap<>();
+    private final Handler autosaveHandler = new Handler(Looper.getMainLooper());
+    private final Runnable autosaveRunnable = this::flushPendingRenames;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StallWatchdog.get().start(StallWatchdog.DEFAULT_THRESHOLD_MS);
         setContentView(R.layout.activity_settings);
 
         cameraPreferences = new CameraPreferences(this);
-        cameraListContainer = findViewById(R.id.cameraListContainer);
+        cameraList = findViewById(R.id.cameraList);
+        emptyText = findViewById(R.id.emptyText);
+
+        adapter = new CameraItemAdapter();
+        cameraList.setLayoutManager(new LinearLayoutManager(this));
+        cameraList.setAdapter(adapter);
+
+        SwitchCompat switchContinuousLens = findViewById(R.id.switchContinuousLens);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            switchContinuousLens.setVisibility(View.GONE);
+        }
+        switchContinuousLens.setChecked(cameraPreferences.isContinuousLensMode());
+        switchContinuousLens.setOnCheckedChangeListener(
+                (buttonView, isChecked) -> cameraPreferences.setContinuousLensMode(isChecked));
+
+        TextView saveQueueDepthText = findViewById(R.id.saveQueueDepthText);
+        SeekBar saveQueueDepthSeek = findViewById(R.id.saveQueueDepthSeek);
+        // SeekBar starts at 0 on API < 26, so its progress is depth - 1
+        saveQueueDepthSeek.setMax(CameraPreferences.MAX_SAVE_QUEUE_DEPTH - 1);
+        saveQueueDepthSeek.setProgress(cameraPreferences.getSaveQueueDepth() - 1);
+        saveQueueDepthText.setText("Photo save queue depth: " + cameraPreferences.getSaveQueueDepth());
+        saveQueueDepthSeek.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                saveQueueDepthText.setText("Photo save queue depth: " + (progress + 1));
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {}
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                cameraPreferences.setSaveQueueDepth(seekBar.getProgress() + 1);
+            }
+        });
 
         Button btnSave = findViewById(R.id.btnSave);
         Button btnReset = findViewById(R.id.btnReset);
@@ -49,31 +101,44 @@ public class SettingsActivity extends AppCompatActivity {
         loadCameras();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        StallWatchdog.get().onActivityStarted();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        StallWatchdog.get().onActivityStopped();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        StallWatchdog.get().stop();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Don't lose renames typed just before leaving the screen
+        flushPendingRenames();
+    }
+
     private void loadCameras() {
-        cameraListContainer.removeAllViews();
         cameraItems.clear();
 
-        // Get all cameras from preferences
-        SharedPreferences prefs = getSharedPreferences("camera_preferences", Context.MODE_PRIVATE);
-        java.util.Map<String, ?> allPrefs = prefs.getAll();
-
-        // Also add cameras that might not have custom names yet
         // We'll discover cameras similar to MainActivity
-        discoverAllCameras();
-
-        // Create UI for each camera
-        for (CameraItem item : cameraItems) {
-            View cameraItemView = createCameraItemView(item);
-            cameraListContainer.addView(cameraItemView);
+        StallWatchdog.Phase previousPhase = StallWatchdog.get().enterPhase(StallWatchdog.Phase.DISCOVERY);
+        try {
+            discoverAllCameras();
+        } finally {
+            StallWatchdog.get().exitPhase(previousPhase);
         }
 
-        if (cameraItems.isEmpty()) {
-            TextView emptyText = new TextView(this);
-            emptyText.setText("No cameras found. Please use the app first to detect cameras.");
-            emptyText.setPadding(16, 16, 16, 16);
-            emptyText.setTextSize(16);
-            cameraListContainer.addView(emptyText);
-        }
+        adapter.notifyDataSetChanged();
+        emptyText.setVisibility(cameraItems.isEmpty() ? View.VISIBLE : View.GONE);
     }
 
     private void discoverAllCameras() {
@@ -105,19 +170,13 @@ public class SettingsActivity extends AppCompatActivity {
         
         // If still no cameras, show cameras from preferences
         if (cameraItems.isEmpty()) {
-            SharedPreferences prefs = getSharedPreferences("camera_preferences", Context.MODE_PRIVATE);
-            java.util.Map<String, ?> allPrefs = prefs.getAll();
-
-            for (java.util.Map.Entry<String, ?> entry : allPrefs.entrySet()) {
-                if (entry.getKey().startsWith("camera_name_")) {
-                    String cameraId = entry.getKey().substring("camera_name_".length());
-                    String customName = entry.getValue().toString();
-                    String defaultName = getDefaultCameraName(cameraId, null);
-                    
-                    CameraItem item = new CameraItem(cameraId, defaultName, customName);
-                    if (!cameraItems.contains(item)) {
-                        cameraItems.add(item);
-                    }
+            for (Map.Entry<String, String> entry : cameraPreferences.getCameraNames().entrySet()) {
+                String cameraId = entry.getKey();
+                String defaultName = getDefaultCameraName(cameraId, null);
+                
+                CameraItem item = new CameraItem(cameraId, defaultName, entry.getValue());
+                if (!cameraItems.contains(item)) {
+                    cameraItems.add(item);
                 }
             }
         }
@@ -213,59 +272,114 @@ public class SettingsActivity extends AppCompatActivity {
         return "Camera " + cameraId;
     }
 
-    private View createCameraItemView(CameraItem item) {
-        LayoutInflater inflater = LayoutInflater.from(this);
-        View view = inflater.inflate(R.layout.item_camera_setting, null);
-
-        TextView cameraIdText = view.findViewById(R.id.cameraIdText);
-        TextView defaultNameText = view.findViewById(R.id.defaultNameText);
-        EditText customNameEdit = view.findViewById(R.id.customNameEdit);
-
-        cameraIdText.setText("ID: " + item.cameraId);
-        defaultNameText.setText("Default: " + item.defaultName);
-        customNameEdit.setText(item.customName);
-        customNameEdit.setHint(item.defaultName);
-
-        customNameEdit.addTextChangedListener(new TextWatcher() {
-            @Override
-            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
-
-            @Override
-            public void onTextChanged(CharSequence s, int start, int before, int count) {
-                item.customName = s.toString();
-            }
+    private void scheduleAutosave(CameraItem item) {
+        pendingRenames.put(item.cameraId, normalizedName(item));
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        autosaveHandler.postDelayed(autosaveRunnable, AUTOSAVE_DELAY_MS);
+    }
 
-            @Override
-            public void afterTextChanged(Editable s) {}
-        });
+    private void flushPendingRenames() {
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        if (pendingRenames.isEmpty()) return;
+        cameraPreferences.setCameraNames(pendingRenames);
+        pendingRenames.clear();
+    }
 
-        return view;
+    /**
+     * Name to store for an item, or null if it should fall back to the default
+     */
+    private String normalizedName(CameraItem item) {
+        if (item.customName == null) return null;
+        String name = item.customName.trim();
+        if (name.isEmpty() || name.equals(item.defaultName)) {
+            return null;
+        }
+        return name;
     }
 
     private void saveAllNames() {
         for (CameraItem item : cameraItems) {
-            if (item.customName != null && !item.customName.trim().isEmpty() 
-                && !item.customName.trim().equals(item.defaultName)) {
-                // Only save if custom name is different from default
-                cameraPreferences.setCameraName(item.cameraId, item.customName.trim());
-            } else {
-                // If empty or same as default, remove custom name to use default
-                cameraPreferences.removeCameraName(item.cameraId);
-            }
+            pendingRenames.put(item.cameraId, normalizedName(item));
         }
+        flushPendingRenames();
         Toast.makeText(this, "Camera names saved!", Toast.LENGTH_SHORT).show();
         finish();
     }
 
     private void resetAllNames() {
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        pendingRenames.clear();
         for (CameraItem item : cameraItems) {
-            cameraPreferences.removeCameraName(item.cameraId);
+            pendingRenames.put(item.cameraId, null);
             item.customName = item.defaultName;
         }
-        loadCameras();
+        flushPendingRenames();
+        adapter.notifyDataSetChanged();
         Toast.makeText(this, "Camera names reset to defaults", Toast.LENGTH_SHORT).show();
     }
 
+    private class CameraItemAdapter extends RecyclerView.Adapter<CameraItemAdapter.ViewHolder> {
+
+        class ViewHolder extends RecyclerView.ViewHolder {
+            final TextView cameraIdText;
+            final TextView defaultNameText;
+            final EditText customNameEdit;
+            CameraItem item;
+            boolean binding;
+
+            ViewHolder(View view) {
+                super(view);
+                cameraIdText = view.findViewById(R.id.cameraIdText);
+                defaultNameText = view.findViewById(R.id.defaultNameText);
+                customNameEdit = view.findViewById(R.id.customNameEdit);
+
+                // One watcher per recycled view, pointed at whichever item is bound
+                customNameEdit.addTextChangedListener(new TextWatcher() {
+                    @Override
+                    public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+                    @Override
+                    public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+                    @Override
+                    public void afterTextChanged(Editable s) {
+                        if (binding || item == null) return;
+                        item.customName = s.toString();
+                        scheduleAutosave(item);
+                    }
+                });
+            }
+
+            void bind(CameraItem item) {
+                this.item = item;
+                binding = true;
+                cameraIdText.setText("ID: " + item.cameraId);
+                defaultNameText.setText("Default: " + item.defaultName);
+                customNameEdit.setText(item.customName);
+                customNameEdit.setHint(item.defaultName);
+                binding = false;
+            }
+        }
+
+        @NonNull
+        @Override
+        public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.item_camera_setting, parent, false);
+            return new ViewHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+            holder.bind(cameraItems.get(position));
+        }
+
+        @Override
+        public int getItemCount() {
+            return cameraItems.size();
+        }
+    }
+
     private static class CameraItem {
         String cameraId;
         String defaultName;
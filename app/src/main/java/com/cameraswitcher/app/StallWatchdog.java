@@ -0,0 +1,225 @@
+package com.cameraswitcher.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Detects stalls on the main looper.
+ *
+ * A background thread posts a heartbeat to the main thread and checks that it ran
+ * within the threshold. When it did not, the main thread's stack and the phase it
+ * was in are recorded. The last {@link #MAX_RECORDS} stalls are kept for export.
+ *
+ * Activities call {@link #start(long)} at the top of onCreate, so their startup work is
+ * watched, and {@link #stop()} from onDestroy. They also report onStart and onStop,
+ * and heartbeats pause while no activity is started: the main thread of a
+ * backgrounded app is not expected to be responsive to us. All calls are counted, so
+ * moving between activities neither stops nor pauses the watchdog.
+ *
+ * Phases are marked on the main thread with {@link #enterPhase(Phase)} and
+ * {@link #exitPhase(Phase)}, which nest.
+ */
+public class StallWatchdog {
+    private static final String TAG = "StallWatchdog";
+    public static final long DEFAULT_THRESHOLD_MS = 500;
+    public static final int MAX_RECORDS = 50;
+    private static final long RECOVERY_POLL_MS = 50;
+
+    public enum Phase {
+        IDLE,
+        DISCOVERY,
+        PREFERENCES_READ,
+        BIND,
+        STRIP_REBUILD
+    }
+
+    private static class StallRecord {
+        final long detectedAtWallMs;
+        final Phase phase;
+        final StackTraceElement[] stack;
+        long durationMs = -1;  // Filled in once the main thread recovers
+
+        StallRecord(long detectedAtWallMs, Phase phase, StackTraceElement[] stack) {
+            this.detectedAtWallMs = detectedAtWallMs;
+            this.phase = phase;
+            this.stack = stack;
+        }
+    }
+
+    private static final StallWatchdog INSTANCE = new StallWatchdog();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<StallRecord> records = new ArrayDeque<>();
+    private final Runnable heartbeat = () -> lastHeartbeatAt = SystemClock.uptimeMillis();
+    private volatile long lastHeartbeatAt;
+    private volatile Phase currentPhase = Phase.IDLE;
+    private long thresholdMs = DEFAULT_THRESHOLD_MS;
+    private Thread thread;
+    private int startCount = 0;
+    private int startedActivities = 0;
+    private volatile boolean paused = false;
+
+    public static StallWatchdog get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start watching the main looper. Every call must be paired with {@link #stop()}.
+     */
+    public synchronized void start(long thresholdMs) {
+        startCount++;
+        // The calling activity is being created and will be started right after
+        paused = false;
+        if (thread != null) return;
+        this.thresholdMs = thresholdMs;
+        thread = new Thread(this::watch, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching once every {@link #start(long)} has been matched. Recorded stalls are kept.
+     */
+    public synchronized void stop() {
+        if (startCount == 0) return;
+        startCount--;
+        if (startCount > 0 || thread == null) return;
+        thread.interrupt();
+        thread = null;
+        mainHandler.removeCallbacks(heartbeat);
+    }
+
+    /**
+     * Call from an activity's onStart
+     */
+    public synchronized void onActivityStarted() {
+        startedActivities++;
+        paused = false;
+    }
+
+    /**
+     * Call from an activity's onStop. Pauses heartbeats once no activity is started.
+     */
+    public synchronized void onActivityStopped() {
+        if (startedActivities > 0) {
+            startedActivities--;
+        }
+        paused = startedActivities == 0;
+    }
+
+    /**
+     * Mark the start of a phase on the main thread. Returns the phase to restore.
+     */
+    public Phase enterPhase(Phase phase) {
+        Phase previous = currentPhase;
+        currentPhase = phase;
+        return previous;
+    }
+
+    /**
+     * Restore the phase returned by the matching {@link #enterPhase(Phase)}
+     */
+    public void exitPhase(Phase previous) {
+        currentPhase = previous;
+    }
+
+    private void watch() {
+        Thread mainThread = Looper.getMainLooper().getThread();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                checkHeartbeat(mainThread);
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    private void checkHeartbeat(Thread mainThread) throws InterruptedException {
+        if (paused) {
+            Thread.sleep(thresholdMs);
+            return;
+        }
+        long postedAt = SystemClock.uptimeMillis();
+        mainHandler.post(heartbeat);
+        Thread.sleep(thresholdMs);
+        // Went to the background meanwhile, a missed heartbeat proves nothing
+        if (lastHeartbeatAt >= postedAt || paused) return;
+
+        // Main thread has not run the heartbeat in time
+        StallRecord record = new StallRecord(System.currentTimeMillis(), currentPhase,
+                mainThread.getStackTrace());
+        synchronized (records) {
+            if (records.size() >= MAX_RECORDS) {
+                records.removeFirst();
+            }
+            records.addLast(record);
+        }
+        Log.w(TAG, "Main thread stalled in phase " + record.phase);
+
+        while (lastHeartbeatAt < postedAt) {
+            Thread.sleep(RECOVERY_POLL_MS);
+        }
+        synchronized (records) {
+            record.durationMs = lastHeartbeatAt - postedAt;
+        }
+        Log.w(TAG, "Main thread stall in phase " + record.phase + " lasted "
+                + record.durationMs + "ms");
+    }
+
+    /**
+     * Number of stalls currently kept in the report
+     */
+    public int getStallCount() {
+        synchronized (records) {
+            return records.size();
+        }
+    }
+
+    /**
+     * Human-readable report of the recorded stalls, oldest first
+     */
+    public String buildReport() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        StringBuilder sb = new StringBuilder();
+        synchronized (records) {
+            sb.append("Main thread stalls over ").append(thresholdMs).append("ms: ")
+                    .append(records.size()).append('\n');
+            for (StallRecord record : records) {
+                sb.append('\n').append(format.format(new Date(record.detectedAtWallMs)))
+                        .append(" phase=").append(record.phase)
+                        .append(" duration=")
+                        .append(record.durationMs >= 0 ? record.durationMs + "ms" : "ongoing")
+                        .append('\n');
+                for (StackTraceElement element : record.stack) {
+                    sb.append("    at ").append(element).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the report to the given directory and return the file
+     */
+    public File exportReport(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, "stall_report.txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(buildReport());
+        }
+        return file;
+    }
+}
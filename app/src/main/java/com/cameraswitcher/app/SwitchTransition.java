@@ -0,0 +1,217 @@
+package com.cameraswitcher.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.PixelCopy;
+import android.view.SurfaceView;
+import android.view.TextureView;
+import android.view.View;
+import android.widget.ImageView;
+
+import androidx.camera.view.PreviewView;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * Hides camera switch latency behind a frozen frame.
+ *
+ * Right before the old camera is unbound, a low resolution copy of the last preview
+ * frame is shown over the preview. Once the new stream reports STREAMING, or after a
+ * timeout, the overlay fades out.
+ *
+ * The frame is read from PreviewView's SurfaceView with {@link PixelCopy}, or from its
+ * TextureView, and drawn through the same view transforms PreviewView applies on
+ * screen. Bitmaps are reused between switches and only reallocated when the preview
+ * size changes.
+ */
+public class SwitchTransition {
+    private static final long FADE_DURATION_MS = 150;
+    private static final long TIMEOUT_MS = 1500;
+    // Don't hold up the switch for longer than this waiting for PixelCopy
+    private static final long PIXEL_COPY_TIMEOUT_MS = 50;
+    private static final int SNAPSHOT_MAX_WIDTH = 320;
+
+    private final PreviewView previewView;
+    private final ImageView overlay;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable timeout = this::finish;
+    private final Runnable copyTimeout = this::ready;
+    private final Runnable hideOverlay = () -> overlay.setVisibility(View.GONE);
+    private final PixelCopy.OnPixelCopyFinishedListener copyListener = this::onPixelCopyFinished;
+    private final Canvas canvas = new Canvas();
+    private final Rect dstRect = new Rect();
+    private final Matrix textureTransform = new Matrix();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // Two buffers so the bitmap still on screen is never the one being overwritten
+    private final Bitmap[] snapshots = new Bitmap[2];
+    private int nextSnapshot = 0;
+    // Preview content at snapshot scale, before the view transforms
+    private Bitmap scratch;
+    private float scale;
+    private View source;
+
+    private Runnable readyCallback;
+    private boolean copyPending = false;  // PixelCopy has not called back yet
+    private boolean active = false;
+    private boolean awaitingIdle = false;  // Ignore STREAMING left over from the outgoing camera
+
+    public SwitchTransition(LifecycleOwner owner, PreviewView previewView, ImageView overlay) {
+        this.previewView = previewView;
+        this.overlay = overlay;
+        previewView.getPreviewStreamState().observe(owner, this::onStreamStateChanged);
+    }
+
+    /**
+     * Freeze the current frame, then run onReady on the main thread, where the outgoing
+     * camera can be unbound. onReady also runs if no frame could be captured.
+     */
+    public void begin(Runnable onReady) {
+        handler.removeCallbacks(copyTimeout);
+        readyCallback = onReady;
+        source = findPreviewSurface();
+        if (source == null || !prepareBitmaps()) {
+            ready();
+            return;
+        }
+
+        if (source instanceof TextureView) {
+            TextureView textureView = (TextureView) source;
+            if (textureView.isAvailable()) {
+                // Scales straight into our bitmap without allocating
+                textureView.getBitmap(scratch);
+                showSnapshot();
+            }
+            ready();
+            return;
+        }
+
+        SurfaceView surfaceView = (SurfaceView) source;
+        if (copyPending || !surfaceView.getHolder().getSurface().isValid()) {
+            ready();
+            return;
+        }
+        copyPending = true;
+        PixelCopy.request(surfaceView, scratch, copyListener, handler);
+        handler.postDelayed(copyTimeout, PIXEL_COPY_TIMEOUT_MS);
+    }
+
+    /**
+     * Fade out immediately, e.g. when the switch failed
+     */
+    public void finish() {
+        handler.removeCallbacks(timeout);
+        if (!active) return;
+        active = false;
+        overlay.animate()
+                .alpha(0f)
+                .setDuration(FADE_DURATION_MS)
+                .withEndAction(hideOverlay)
+                .start();
+    }
+
+    private void onStreamStateChanged(PreviewView.StreamState state) {
+        if (!active) return;
+        if (state == PreviewView.StreamState.IDLE) {
+            awaitingIdle = false;
+        } else if (state == PreviewView.StreamState.STREAMING && !awaitingIdle) {
+            finish();
+        }
+    }
+
+    private void onPixelCopyFinished(int result) {
+        copyPending = false;
+        // Timed out: the switch already went ahead without a snapshot
+        if (readyCallback == null) return;
+        handler.removeCallbacks(copyTimeout);
+        if (result == PixelCopy.SUCCESS) {
+            showSnapshot();
+        }
+        ready();
+    }
+
+    private void ready() {
+        Runnable callback = readyCallback;
+        readyCallback = null;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Size the snapshot to the preview and the scratch bitmap to the source view,
+     * both at snapshot scale. Returns false if nothing is laid out yet.
+     */
+    private boolean prepareBitmaps() {
+        int viewWidth = previewView.getWidth();
+        int viewHeight = previewView.getHeight();
+        if (viewWidth == 0 || viewHeight == 0 || source.getWidth() == 0 || source.getHeight() == 0) {
+            return false;
+        }
+
+        int width = Math.min(SNAPSHOT_MAX_WIDTH, viewWidth);
+        int height = Math.max(1, viewHeight * width / viewWidth);
+        scale = (float) width / viewWidth;
+        Bitmap snapshot = snapshots[nextSnapshot];
+        if (snapshot == null || snapshot.getWidth() != width || snapshot.getHeight() != height) {
+            snapshots[nextSnapshot] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        int scratchWidth = Math.max(1, Math.round(source.getWidth() * scale));
+        int scratchHeight = Math.max(1, Math.round(source.getHeight() * scale));
+        if (scratch == null || scratch.getWidth() != scratchWidth || scratch.getHeight() != scratchHeight) {
+            if (copyPending) return false;  // A late PixelCopy may still write into it
+            scratch = Bitmap.createBitmap(scratchWidth, scratchHeight, Bitmap.Config.ARGB_8888);
+        }
+        return true;
+    }
+
+    /**
+     * Draw the scratch bitmap the way PreviewView draws the source view, and show it
+     */
+    private void showSnapshot() {
+        Bitmap snapshot = snapshots[nextSnapshot];
+        nextSnapshot = (nextSnapshot + 1) % snapshots.length;
+
+        snapshot.eraseColor(Color.BLACK);
+        canvas.setBitmap(snapshot);
+        canvas.save();
+        canvas.scale(scale, scale);
+        // PreviewView scales and positions its child to crop and rotate the stream
+        canvas.translate(source.getLeft(), source.getTop());
+        canvas.concat(source.getMatrix());
+        if (source instanceof TextureView) {
+            // getBitmap() returns the buffer without the texture transform
+            canvas.concat(((TextureView) source).getTransform(textureTransform));
+        }
+        dstRect.set(0, 0, source.getWidth(), source.getHeight());
+        canvas.drawBitmap(scratch, null, dstRect, paint);
+        canvas.restore();
+        canvas.setBitmap(null);
+
+        overlay.animate().cancel();
+        overlay.setImageBitmap(snapshot);
+        overlay.setAlpha(1f);
+        overlay.setVisibility(View.VISIBLE);
+
+        active = true;
+        awaitingIdle = true;
+        handler.removeCallbacks(timeout);
+        handler.postDelayed(timeout, TIMEOUT_MS);
+    }
+
+    private View findPreviewSurface() {
+        for (int i = 0; i < previewView.getChildCount(); i++) {
+            View child = previewView.getChildAt(i);
+            if (child instanceof SurfaceView || child instanceof TextureView) {
+                return child;
+            }
+        }
+        return null;
+    }
+}